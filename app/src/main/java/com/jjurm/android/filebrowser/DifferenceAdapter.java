@@ -0,0 +1,52 @@
+package com.jjurm.android.filebrowser;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ImageView;
+
+import java.util.List;
+
+/**
+ * A subclass of ArrayAdapter showing the differences found by FolderComparator
+ */
+public class DifferenceAdapter extends ArrayAdapter<FolderComparator.Difference> {
+
+    private Context mContext;
+    private List<FolderComparator.Difference> mObjects;
+
+    public DifferenceAdapter(Context context, int resource, int textViewResourceId,
+                             List<FolderComparator.Difference> objects) {
+        super(context, resource, textViewResourceId, objects);
+        mContext = context;
+        mObjects = objects;
+    }
+
+    @NonNull
+    @Override
+    public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+        View v = super.getView(position, convertView, parent);
+        FolderComparator.Difference difference = mObjects.get(position);
+
+        // check if the entry is a file or a directory
+        ImageView imageView = (ImageView) v.findViewById(R.id.imageView);
+        if (difference.isDirectory) {
+            imageView.setImageResource(R.drawable.ic_folder);
+        } else {
+            imageView.setImageResource(R.drawable.ic_file);
+        }
+
+        // highlight entries that will be deleted by mirroring
+        if (difference.type == FolderComparator.REMOVED) {
+            v.setBackgroundColor(ContextCompat.getColor(mContext, R.color.colorDivider));
+        } else {
+            v.setBackgroundColor(ContextCompat.getColor(mContext, android.R.color.white));
+        }
+
+        return v;
+    }
+
+}
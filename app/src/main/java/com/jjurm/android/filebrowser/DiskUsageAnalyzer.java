@@ -0,0 +1,375 @@
+package com.jjurm.android.filebrowser;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks a directory tree once on a pool of threads and collects a disk-usage report: the N
+ * largest files and folders and the total bytes per extension and per top-level folder.
+ */
+class DiskUsageAnalyzer {
+
+    // how often (at most) a partial report is passed to the listener
+    private static final long PROGRESS_INTERVAL_MS = 300;
+
+    // bucket name for files without an extension
+    static final String NO_EXTENSION = "";
+
+    // bucket name for files placed directly in the root directory
+    static final String ROOT_FILES = "";
+
+    // the last finished report, used for fast reopening of the storage screen
+    private static Report sCachedReport;
+
+    /**
+     * Receives partial reports while the walk runs and the final report once it's done. Methods
+     * are called on a worker thread.
+     */
+    interface Listener {
+
+        void onProgress(Report report);
+
+        void onFinished(Report report);
+
+    }
+
+    /**
+     * A file or a folder together with the number of bytes it occupies
+     */
+    static class Entry {
+
+        final File file;
+        final long size;
+
+        Entry(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+    }
+
+    /**
+     * Snapshot of the collected statistics. Lists are sorted by size, largest first.
+     */
+    static class Report {
+
+        final File root;
+        final boolean finished;
+        final long totalBytes;
+        final int fileCount;
+        final List<Entry> largestFiles;
+        final List<Entry> largestFolders;
+        final List<Map.Entry<String, Long>> bytesByExtension;
+        final List<Map.Entry<String, Long>> bytesByTopLevelFolder;
+
+        Report(File root, boolean finished, long totalBytes, int fileCount,
+               List<Entry> largestFiles, List<Entry> largestFolders,
+               List<Map.Entry<String, Long>> bytesByExtension,
+               List<Map.Entry<String, Long>> bytesByTopLevelFolder) {
+            this.root = root;
+            this.finished = finished;
+            this.totalBytes = totalBytes;
+            this.fileCount = fileCount;
+            this.largestFiles = largestFiles;
+            this.largestFolders = largestFolders;
+            this.bytesByExtension = bytesByExtension;
+            this.bytesByTopLevelFolder = bytesByTopLevelFolder;
+        }
+
+    }
+
+    /**
+     * A directory being walked. Its size is final once all of its subdirectories are finished,
+     * which is tracked by the pending counter (one for the directory itself plus one per child).
+     */
+    private static class DirNode {
+
+        final File dir;
+        final DirNode parent;
+        final String topLevel;
+        final AtomicLong size = new AtomicLong();
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        DirNode(File dir, DirNode parent, String topLevel) {
+            this.dir = dir;
+            this.parent = parent;
+            this.topLevel = topLevel;
+        }
+
+    }
+
+    private static final Comparator<Entry> BY_SIZE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return o1.size < o2.size ? -1 : (o1.size == o2.size ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Map.Entry<String, Long>> BY_VALUE_DESC =
+            new Comparator<Map.Entry<String, Long>>() {
+                @Override
+                public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                    return o2.getValue().compareTo(o1.getValue());
+                }
+            };
+
+    private final File mRoot;
+    private final int mTopN;
+    private final Listener mListener;
+    private final ExecutorService mPool;
+
+    // bounded min-heaps, the smallest of the kept entries is at the head
+    private final PriorityQueue<Entry> mLargestFiles;
+    private final PriorityQueue<Entry> mLargestFolders;
+
+    // size of the smallest kept file once mLargestFiles is full, smaller files are skipped early
+    private volatile long mLargestFilesMin = -1;
+
+    private final Map<String, AtomicLong> mBytesByExtension = new HashMap<>();
+    private final Map<String, AtomicLong> mBytesByTopLevel = new HashMap<>();
+    private final AtomicLong mTotalBytes = new AtomicLong();
+    private final AtomicInteger mFileCount = new AtomicInteger();
+    private final AtomicLong mLastProgress = new AtomicLong();
+
+    private volatile boolean mCancelled = false;
+    private volatile boolean mDone = false;
+
+    DiskUsageAnalyzer(@NonNull File root, int topN, @NonNull Listener listener) {
+        mRoot = root;
+        mTopN = topN;
+        mListener = listener;
+        mLargestFiles = new PriorityQueue<>(topN, BY_SIZE);
+        mLargestFolders = new PriorityQueue<>(topN, BY_SIZE);
+        mPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Get the last finished report for the given root, or null if there is none
+     *
+     * @param root root directory of the report
+     */
+    static synchronized Report getCachedReport(File root) {
+        if (sCachedReport != null && sCachedReport.root.equals(root))
+            return sCachedReport;
+        return null;
+    }
+
+    private static synchronized void setCachedReport(Report report) {
+        sCachedReport = report;
+    }
+
+    Listener getListener() {
+        return mListener;
+    }
+
+    /**
+     * Start the walk. Returns immediately, the results are delivered to the listener.
+     */
+    void start() {
+        submit(new DirNode(mRoot, null, null));
+    }
+
+    /**
+     * Stop the walk, no more callbacks will be made
+     */
+    void cancel() {
+        mCancelled = true;
+        mPool.shutdownNow();
+    }
+
+    private void submit(final DirNode node) {
+        try {
+            mPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    walk(node);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the walk has been cancelled
+        }
+    }
+
+    /**
+     * Sum up the files in the directory and submit its subdirectories
+     *
+     * @param node the directory to process
+     */
+    private void walk(DirNode node) {
+        if (mCancelled)
+            return;
+
+        File[] children = node.dir.listFiles();
+        File canonicalDir = null;
+        if (children != null) {
+            try {
+                canonicalDir = node.dir.getCanonicalFile();
+            } catch (IOException e) {
+                children = null;
+            }
+        }
+        if (children != null) {
+            // collect the statistics of the directory locally and merge them once at the end
+            long localBytes = 0;
+            long threshold = mLargestFilesMin;
+            PriorityQueue<Entry> localLargest = new PriorityQueue<>(mTopN, BY_SIZE);
+            Map<String, Long> localByExtension = new HashMap<>();
+            for (File child : children) {
+                // links are skipped, files would be counted twice and directories could form cycles
+                if (FileUtils.isSymlink(canonicalDir, child.getName()))
+                    continue;
+                if (child.isDirectory()) {
+                    String topLevel = node.parent == null ? child.getName() : node.topLevel;
+                    node.pending.incrementAndGet();
+                    submit(new DirNode(child, node, topLevel));
+                } else {
+                    long length = child.length();
+                    localBytes += length;
+                    mFileCount.incrementAndGet();
+                    String extension = getExtension(child);
+                    Long extensionBytes = localByExtension.get(extension);
+                    localByExtension.put(extension,
+                            extensionBytes == null ? length : extensionBytes + length);
+                    if (length > threshold)
+                        offer(localLargest, new Entry(child, length));
+                }
+            }
+            mergeLargestFiles(localLargest);
+            for (Map.Entry<String, Long> e : localByExtension.entrySet())
+                addTo(mBytesByExtension, e.getKey(), e.getValue());
+            node.size.addAndGet(localBytes);
+            mTotalBytes.addAndGet(localBytes);
+            addTo(mBytesByTopLevel, node.topLevel == null ? ROOT_FILES : node.topLevel, localBytes);
+        }
+
+        finish(node);
+        maybeReportProgress();
+    }
+
+    /**
+     * Mark one pending part of the directory as done. Once the whole subtree is done, the size of
+     * the directory is final and is propagated to the parent.
+     *
+     * @param node the directory
+     */
+    private void finish(DirNode node) {
+        while (node != null && node.pending.decrementAndGet() == 0) {
+            if (node.parent == null) {
+                // the whole tree has been walked
+                mDone = true;
+                Report report = snapshot(true);
+                mPool.shutdown();
+                if (!mCancelled) {
+                    setCachedReport(report);
+                    mListener.onFinished(report);
+                }
+                return;
+            }
+            offer(mLargestFolders, new Entry(node.dir, node.size.get()));
+            node.parent.size.addAndGet(node.size.get());
+            node = node.parent;
+        }
+    }
+
+    private void maybeReportProgress() {
+        long now = System.currentTimeMillis();
+        long last = mLastProgress.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && mLastProgress.compareAndSet(last, now)
+                && !mCancelled && !mDone) {
+            mListener.onProgress(snapshot(false));
+        }
+    }
+
+    /**
+     * Add the entry to the heap, dropping the smallest entry if the heap is full
+     */
+    private void offer(PriorityQueue<Entry> heap, Entry entry) {
+        synchronized (heap) {
+            if (heap.size() < mTopN) {
+                heap.add(entry);
+            } else if (heap.peek().size < entry.size) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Merge the largest files of one directory into the global heap
+     */
+    private void mergeLargestFiles(PriorityQueue<Entry> local) {
+        if (local.isEmpty())
+            return;
+        synchronized (mLargestFiles) {
+            for (Entry entry : local)
+                offer(mLargestFiles, entry);
+            if (mLargestFiles.size() == mTopN)
+                mLargestFilesMin = mLargestFiles.peek().size;
+        }
+    }
+
+    private static void addTo(Map<String, AtomicLong> map, String key, long bytes) {
+        AtomicLong counter;
+        synchronized (map) {
+            counter = map.get(key);
+            if (counter == null) {
+                counter = new AtomicLong();
+                map.put(key, counter);
+            }
+        }
+        counter.addAndGet(bytes);
+    }
+
+    private Report snapshot(boolean finished) {
+        return new Report(mRoot, finished, mTotalBytes.get(), mFileCount.get(),
+                sortedEntries(mLargestFiles), sortedEntries(mLargestFolders),
+                sortedTotals(mBytesByExtension), sortedTotals(mBytesByTopLevel));
+    }
+
+    private static List<Entry> sortedEntries(PriorityQueue<Entry> heap) {
+        List<Entry> list;
+        synchronized (heap) {
+            list = new ArrayList<>(heap);
+        }
+        Collections.sort(list, Collections.reverseOrder(BY_SIZE));
+        return list;
+    }
+
+    private static List<Map.Entry<String, Long>> sortedTotals(Map<String, AtomicLong> map) {
+        Map<String, Long> copy = new HashMap<>();
+        synchronized (map) {
+            for (Map.Entry<String, AtomicLong> e : map.entrySet())
+                copy.put(e.getKey(), e.getValue().get());
+        }
+        List<Map.Entry<String, Long>> list = new ArrayList<>(copy.entrySet());
+        Collections.sort(list, BY_VALUE_DESC);
+        return list;
+    }
+
+    /**
+     * Get the lower-case extension of the file, or NO_EXTENSION if it has none
+     */
+    static String getExtension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1)
+            return NO_EXTENSION;
+        return name.substring(dot + 1).toLowerCase(Locale.US);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.jjurm.android.filebrowser;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Helpers for walking and deleting directory trees, shared by the file list, the storage report
+ * and the folder comparison
+ */
+class FileUtils {
+
+    private FileUtils() {
+    }
+
+    /**
+     * List the files in the directory
+     *
+     * @param dir the directory to list
+     * @return the files in the directory, or an empty array if it can't be read
+     */
+    static File[] listFiles(File dir) {
+        File[] files = dir.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Check whether the file is a symbolic link, so that walks don't follow it (and possibly end up
+     * in a cycle or outside of the walked tree)
+     *
+     * @param file the file to check
+     */
+    static boolean isSymlink(File file) {
+        try {
+            File parent = file.getParentFile();
+            return isSymlink(parent == null ? null : parent.getCanonicalFile(), file.getName());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Check whether the entry of an already resolved directory is a symbolic link. Cheaper than
+     * isSymlink(File) when checking all entries of one directory.
+     *
+     * @param canonicalParent canonical path of the directory containing the entry
+     * @param name            name of the entry
+     */
+    static boolean isSymlink(File canonicalParent, String name) {
+        try {
+            File resolved = new File(canonicalParent, name);
+            return !resolved.getCanonicalFile().equals(resolved.getAbsoluteFile());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * If the path is a directory, it recursively deletes all files in it. Then it deletes the path
+     * itself. Symbolic links are deleted without following them.
+     *
+     * @param fileOrDirectory path to delete
+     * @return true if everything was deleted
+     */
+    static boolean deleteRecursive(File fileOrDirectory) {
+        boolean deleted = true;
+        if (fileOrDirectory.isDirectory() && !isSymlink(fileOrDirectory))
+            for (File child : listFiles(fileOrDirectory))
+                deleted &= deleteRecursive(child);
+
+        return fileOrDirectory.delete() && deleted;
+    }
+
+}
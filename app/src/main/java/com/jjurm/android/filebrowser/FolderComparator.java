@@ -0,0 +1,485 @@
+package com.jjurm.android.filebrowser;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares two directory trees on a pool of threads and lists the entries that were added,
+ * removed or changed in the source relative to the target. The differences can then be applied
+ * to the target, making it a mirror of the source.
+ */
+class FolderComparator {
+
+    // modification times closer than this are considered equal (FAT stores them with 2s precision)
+    private static final long MTIME_TOLERANCE_MS = 2000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // suffix of the temporary files a mirror writes before replacing the targets
+    private static final String TEMP_SUFFIX = ".mirror-tmp";
+
+    // executor for mirroring, shared by all activities so that a mirror survives their recreation
+    private static final ExecutorService sMirrorExecutor = Executors.newSingleThreadExecutor();
+
+    // whether a mirror is being applied
+    private static boolean sMirroring = false;
+
+    // listener for the end of the mirror and a result which arrived while no one was listening
+    private static MirrorListener sMirrorListener;
+    private static MirrorResult sPendingMirrorResult;
+
+    // types of differences
+    static final int ADDED = 1;
+    static final int REMOVED = 2;
+    static final int CHANGED = 3;
+
+    /**
+     * Receives the result once both trees are walked. Called on a worker thread.
+     */
+    interface Listener {
+
+        void onFinished(Result result);
+
+    }
+
+    /**
+     * Receives the result of a mirror started by startMirror(). Called on a worker thread.
+     */
+    interface MirrorListener {
+
+        void onMirrorFinished(MirrorResult result);
+
+    }
+
+    /**
+     * Result of the comparison
+     */
+    static class Result {
+
+        // differences sorted by path
+        final List<Difference> differences;
+
+        // whether the source directory itself couldn't be listed, the differences are empty then
+        final boolean sourceUnreadable;
+
+        // number of source subdirectories that couldn't be listed and were left out
+        final int skippedDirectories;
+
+        Result(List<Difference> differences, boolean sourceUnreadable, int skippedDirectories) {
+            this.differences = differences;
+            this.sourceUnreadable = sourceUnreadable;
+            this.skippedDirectories = skippedDirectories;
+        }
+
+    }
+
+    /**
+     * A single entry which differs between the source and the target
+     */
+    static class Difference {
+
+        final int type;
+        final String relativePath;
+        final File source;
+        final File target;
+        final boolean isDirectory;
+
+        Difference(int type, String relativePath, File source, File target, boolean isDirectory) {
+            this.type = type;
+            this.relativePath = relativePath;
+            this.source = source;
+            this.target = target;
+            this.isDirectory = isDirectory;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            String prefix = type == ADDED ? "+ " : (type == REMOVED ? "- " : "* ");
+            return prefix + relativePath + (isDirectory ? "/" : "");
+        }
+
+    }
+
+    private static final Comparator<Difference> BY_PATH = new Comparator<Difference>() {
+        @Override
+        public int compare(Difference o1, Difference o2) {
+            return o1.relativePath.compareTo(o2.relativePath);
+        }
+    };
+
+    private final File mSource;
+    private final File mTarget;
+    private final boolean mVerifyHashes;
+    private final Listener mListener;
+    private final ExecutorService mPool;
+
+    private final List<Difference> mDifferences = new ArrayList<>();
+
+    // number of directory pairs submitted but not yet compared
+    private final AtomicInteger mPending = new AtomicInteger();
+
+    // number of source directories that couldn't be listed
+    private final AtomicInteger mSkipped = new AtomicInteger();
+    private volatile boolean mSourceUnreadable = false;
+
+    private volatile boolean mCancelled = false;
+
+    /**
+     * @param source       the directory whose content is considered up to date
+     * @param target       the directory to compare against the source
+     * @param verifyHashes whether files of the same size should be compared by content hash
+     *                     instead of by modification time
+     * @param listener     listener to receive the result
+     */
+    FolderComparator(@NonNull File source, @NonNull File target, boolean verifyHashes,
+                     @NonNull Listener listener) {
+        mSource = source;
+        mTarget = target;
+        mVerifyHashes = verifyHashes;
+        mListener = listener;
+        mPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    Listener getListener() {
+        return mListener;
+    }
+
+    /**
+     * Start the comparison. Returns immediately, the result is delivered to the listener.
+     */
+    void start() {
+        submit(mSource, mTarget, "");
+    }
+
+    /**
+     * Stop the comparison, the listener won't be called
+     */
+    void cancel() {
+        mCancelled = true;
+        mPool.shutdownNow();
+    }
+
+    private void submit(final File source, final File target, final String relativePath) {
+        mPending.incrementAndGet();
+        try {
+            mPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compareDirs(source, target, relativePath);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the comparison has been cancelled
+        }
+    }
+
+    /**
+     * Compare the children of two directories and submit the pairs of subdirectories
+     *
+     * @param source       directory in the source tree
+     * @param target       directory at the same position in the target tree
+     * @param relativePath path of the directories relative to the roots
+     */
+    private void compareDirs(File source, File target, String relativePath) {
+        // an unreadable source directory is skipped, so that its target isn't reported as removed
+        File[] sourceChildren = mCancelled ? null : source.listFiles();
+        if (sourceChildren == null && !mCancelled) {
+            if (relativePath.isEmpty())
+                mSourceUnreadable = true;
+            else
+                mSkipped.incrementAndGet();
+        } else if (sourceChildren != null) {
+            List<Difference> found = new ArrayList<>();
+            File[] targetChildren = FileUtils.listFiles(target);
+            File canonicalTarget = canonicalFile(target);
+
+            Map<String, File> targetByName = new HashMap<>();
+            for (File t : targetChildren)
+                targetByName.put(t.getName(), t);
+
+            for (File s : sourceChildren) {
+                String childPath = relativePath + s.getName();
+                File t = targetByName.remove(s.getName());
+                if (t == null) {
+                    found.add(new Difference(ADDED, childPath, s, new File(target, s.getName()),
+                            s.isDirectory()));
+                } else if (canonicalTarget == null
+                        || FileUtils.isSymlink(canonicalTarget, t.getName())) {
+                    // never walk or write through a link in the target, it may point outside of it
+                    found.add(new Difference(CHANGED, childPath, s, t, s.isDirectory()));
+                } else if (s.isDirectory() && t.isDirectory()) {
+                    if (!FileUtils.isSymlink(s))
+                        submit(s, t, childPath + File.separator);
+                } else if (s.isDirectory() != t.isDirectory() || !sameContent(s, t)) {
+                    found.add(new Difference(CHANGED, childPath, s, t, s.isDirectory()));
+                }
+            }
+            for (File t : targetByName.values()) {
+                found.add(new Difference(REMOVED, relativePath + t.getName(),
+                        new File(source, t.getName()), t, t.isDirectory()));
+            }
+
+            if (!found.isEmpty()) {
+                synchronized (mDifferences) {
+                    mDifferences.addAll(found);
+                }
+            }
+        }
+
+        if (mPending.decrementAndGet() == 0) {
+            // all directory pairs have been compared
+            mPool.shutdown();
+            if (!mCancelled) {
+                List<Difference> result;
+                synchronized (mDifferences) {
+                    result = new ArrayList<>(mDifferences);
+                }
+                Collections.sort(result, BY_PATH);
+                mListener.onFinished(new Result(result, mSourceUnreadable, mSkipped.get()));
+            }
+        }
+    }
+
+    private static File canonicalFile(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decide whether two files have the same content, either by size and modification time or by
+     * size and content hash
+     */
+    private boolean sameContent(File source, File target) {
+        if (source.length() != target.length())
+            return false;
+        if (mVerifyHashes) {
+            try {
+                return Arrays.equals(hash(source), hash(target));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return Math.abs(source.lastModified() - target.lastModified()) <= MTIME_TOLERANCE_MS;
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Check whether a mirror started by startMirror() is still being applied
+     */
+    static synchronized boolean isMirroring() {
+        return sMirroring;
+    }
+
+    /**
+     * Set the listener to notify when the mirror finishes. A result which arrived while no
+     * listener was set is passed to the new listener right away.
+     *
+     * @param listener new listener, or null to stop listening
+     */
+    static void setMirrorListener(MirrorListener listener) {
+        MirrorResult pending;
+        synchronized (FolderComparator.class) {
+            sMirrorListener = listener;
+            pending = listener == null ? null : sPendingMirrorResult;
+            if (pending != null)
+                sPendingMirrorResult = null;
+        }
+        if (pending != null)
+            listener.onMirrorFinished(pending);
+    }
+
+    /**
+     * Apply the differences in the background, unless another mirror is still being applied
+     *
+     * @param differences result of the comparison
+     * @return false if another mirror is running and nothing was started
+     */
+    static synchronized boolean startMirror(final List<Difference> differences) {
+        if (sMirroring)
+            return false;
+        sMirroring = true;
+        sMirrorExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                MirrorResult result = mirror(differences);
+                MirrorListener listener;
+                synchronized (FolderComparator.class) {
+                    sMirroring = false;
+                    listener = sMirrorListener;
+                    if (listener == null)
+                        sPendingMirrorResult = result;
+                }
+                if (listener != null)
+                    listener.onMirrorFinished(result);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Apply the differences to the target tree: copy added and changed entries from the source and
+     * delete removed entries. Runs on the calling thread.
+     *
+     * @param differences result of the comparison
+     * @return counts of the entries that couldn't be mirrored
+     */
+    static MirrorResult mirror(List<Difference> differences) {
+        MirrorResult result = new MirrorResult();
+        for (Difference d : differences) {
+            try {
+                switch (d.type) {
+                    case REMOVED:
+                        delete(d.target);
+                        break;
+                    case CHANGED:
+                        // a file can't be overwritten by a directory or the other way round, and
+                        // links are replaced instead of written through
+                        if (d.source.isDirectory() != d.target.isDirectory()
+                                || FileUtils.isSymlink(d.target))
+                            delete(d.target);
+                        copyRecursive(d.source, d.target, result);
+                        break;
+                    case ADDED:
+                        copyRecursive(d.source, d.target, result);
+                        break;
+                }
+            } catch (IOException e) {
+                result.failed++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts of problems encountered while mirroring
+     */
+    static class MirrorResult {
+
+        // entries that couldn't be copied or deleted
+        int failed = 0;
+
+        // files copied without their modification time, the next comparison by modification time
+        // will report them as changed again
+        int timesNotKept = 0;
+
+    }
+
+    /**
+     * Copy the file or the whole directory, keeping modification times so that the next comparison
+     * treats the copies as unchanged. Symbolic links to directories are not followed.
+     *
+     * @param source file or directory to copy
+     * @param target destination path
+     * @param result result to record files whose modification time couldn't be set
+     */
+    private static void copyRecursive(File source, File target, MirrorResult result)
+            throws IOException {
+        if (source.isDirectory()) {
+            if (FileUtils.isSymlink(source))
+                throw new IOException("Not following symbolic link " + source);
+            if (!target.isDirectory() && !target.mkdirs())
+                throw new IOException("Can't create directory " + target);
+
+            // copy as much as possible and report the first failure
+            IOException failure = null;
+            for (File child : FileUtils.listFiles(source)) {
+                try {
+                    copyRecursive(child, new File(target, child.getName()), result);
+                } catch (IOException e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } else {
+            copyFile(source, target, result);
+        }
+    }
+
+    /**
+     * Copy the file into a temporary file next to the target and rename it over the target, so
+     * that a failed or interrupted copy never leaves a truncated file in place of the old one
+     *
+     * @param source file to copy
+     * @param target destination path
+     * @param result result to record files whose modification time couldn't be set
+     */
+    private static void copyFile(File source, File target, MirrorResult result)
+            throws IOException {
+        File temp = new File(target.getParentFile(), "." + target.getName() + TEMP_SUFFIX);
+        try {
+            InputStream in = new FileInputStream(source);
+            try {
+                OutputStream out = new FileOutputStream(temp);
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                        out.write(buffer, 0, read);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            // some external storage mounts don't support setting the modification time
+            if (!temp.setLastModified(source.lastModified()))
+                result.timesNotKept++;
+
+            // some file systems can't rename over an existing file, replace it in two steps then
+            if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target)))
+                throw new IOException("Can't replace " + target);
+        } finally {
+            if (temp.exists())
+                temp.delete();
+        }
+    }
+
+    private static void delete(File fileOrDirectory) throws IOException {
+        if (!FileUtils.deleteRecursive(fileOrDirectory))
+            throw new IOException("Can't delete " + fileOrDirectory);
+    }
+
+}
@@ -1,8 +1,10 @@
 package com.jjurm.android.filebrowser;
 
 import android.Manifest;
+import android.app.AlertDialog;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
@@ -28,11 +30,14 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.AdapterView;
+import android.widget.Button;
+import android.widget.ListView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -52,6 +57,7 @@ public class MainActivity extends AppCompatActivity {
     // IDs for permission requests
     public static final int PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE = 1;
     public static final int PERMISSIONS_REQUEST_WRITE_EXTERNAL_STORAGE = 2;
+    public static final int PERMISSIONS_REQUEST_WRITE_FOR_MIRROR = 3;
 
     // types of animation of the file list
     public static final int ANIM_LEVEL_UP = 1;
@@ -73,6 +79,39 @@ public class MainActivity extends AppCompatActivity {
     // executor for tasks on a separate thread
     ExecutorService executor = Executors.newSingleThreadExecutor();
 
+    // number of entries in the lists of largest files and folders
+    public static final int STORAGE_REPORT_TOP_N = 20;
+
+    // the running storage analysis, if any
+    DiskUsageAnalyzer mDiskUsageAnalyzer = null;
+
+    // the storage report being shown, null if the file list is shown
+    StorageFragment mStorageFragment = null;
+
+    // the directory chosen as the source of the comparison
+    File mCompareSource = null;
+
+    // the running comparison, if any
+    FolderComparator mFolderComparator = null;
+
+    // the comparison being shown, null if the file list is shown
+    CompareFragment mCompareFragment = null;
+
+    // differences to mirror after a write permission is granted
+    List<FolderComparator.Difference> mDifferencesToMirror = null;
+
+    // lifecycle state, results of background work are dropped once the activity is destroyed
+    boolean mResumed = false;
+    boolean mDestroyed = false;
+
+    // receives the end of a mirror while the activity is resumed
+    FolderComparator.MirrorListener mMirrorListener = new FolderComparator.MirrorListener() {
+        @Override
+        public void onMirrorFinished(FolderComparator.MirrorResult result) {
+            MainActivity.this.onMirrorFinished(result);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -105,12 +144,42 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // comparing is possible only after the source is chosen
+        menu.findItem(R.id.action_compare).setVisible(mCompareSource != null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.action_refresh:
-                // refresh the list of files
-                refreshDir(ANIM_NONE);
+                if (mStorageFragment != null) {
+                    // walk the storage again
+                    startStorageAnalysis();
+                } else if (mCompareFragment != null) {
+                    // compare the folders again
+                    showComparison(mCompareFragment.mSource, mCompareFragment.mTarget, ANIM_NONE);
+                } else {
+                    // refresh the list of files
+                    refreshDir(ANIM_NONE);
+                }
+                return true;
+            case R.id.action_storage:
+                // open the storage usage report
+                showStorageReport();
+                return true;
+            case R.id.action_compare_source:
+                // remember the current directory as the source of the comparison
+                mCompareSource = mCurrentPath;
+                supportInvalidateOptionsMenu();
+                Toast.makeText(this, getString(R.string.compare_source_set,
+                        mCompareSource.getAbsolutePath()), Toast.LENGTH_SHORT).show();
+                return true;
+            case R.id.action_compare:
+                // compare the source with the current directory
+                showComparison(mCompareSource, mCurrentPath, ANIM_LEVEL_UP);
                 return true;
             case R.id.action_settings:
                 // open settings
@@ -121,8 +190,40 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mResumed = true;
+        FolderComparator.setMirrorListener(mMirrorListener);
+        if (mCompareFragment != null)
+            mCompareFragment.setMirroring(FolderComparator.isMirroring());
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mResumed = false;
+        FolderComparator.setMirrorListener(null);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyed = true;
+        if (mDiskUsageAnalyzer != null)
+            mDiskUsageAnalyzer.cancel();
+        if (mFolderComparator != null)
+            mFolderComparator.cancel();
+    }
+
     @Override
     public void onBackPressed() {
+        if (mStorageFragment != null || mCompareFragment != null) {
+            // return from the storage report or the comparison to the current directory
+            refreshDir(ANIM_LEVEL_DOWN);
+            return;
+        }
+
         // determine if the app should go up or close
         File parent = mCurrentPath.getParentFile();
         if (parent == null || mCurrentPath.equals(defaultPath)) {
@@ -148,11 +249,21 @@ public class MainActivity extends AppCompatActivity {
                     // delete files that were requested to be deleted
                     if (mFilesToDelete != null) {
                         for (File f : mFilesToDelete)
-                            deleteRecursive(f);
+                            FileUtils.deleteRecursive(f);
                         refreshDir(ANIM_NONE);
                     }
                 }
                 break;
+            case PERMISSIONS_REQUEST_WRITE_FOR_MIRROR:
+                // check if the permission was granted
+                if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                    // mirror the differences that were requested to be mirrored
+                    if (mDifferencesToMirror != null) {
+                        mirror(mDifferencesToMirror);
+                        mDifferencesToMirror = null;
+                    }
+                }
+                break;
         }
     }
 
@@ -193,33 +304,10 @@ public class MainActivity extends AppCompatActivity {
      * @param anim either ANIM_LEVEL_UP, ANIM_LEVEL_DOWN or ANIM_NONE
      */
     private void refreshDir(final int anim) {
-        // check read permission
-        int permissionCheck = ContextCompat.checkSelfPermission(this,
-                Manifest.permission.READ_EXTERNAL_STORAGE);
-        if (permissionCheck != PackageManager.PERMISSION_GRANTED) {
-
-            if (!mPermissionsRequested.contains(PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE)) {
-                // request the permission
-                mPermissionsRequested.add(PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE);
-                ActivityCompat.requestPermissions(this,
-                        new String[]{Manifest.permission.READ_EXTERNAL_STORAGE},
-                        PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE);
-            } else {
-                // last permission request was unsuccessful
-                MessageFragment messageFragment = new MessageFragment();
-                messageFragment.setMessage(getString(R.string.missing_read_external_storage_permission));
-                replaceFragment(messageFragment, anim);
-            }
-            return;
-        }
-
-        // check if the external storage is mounted
-        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
-            MessageFragment messageFragment = new MessageFragment();
-            messageFragment.setMessage(getString(R.string.external_storage_not_mounted));
-            replaceFragment(messageFragment, anim);
+        mStorageFragment = null;
+        mCompareFragment = null;
+        if (!checkStorageAccess(anim))
             return;
-        }
 
         // show the path in the subtitle
         getSupportActionBar().setSubtitle(mCurrentPath.getAbsolutePath());
@@ -262,6 +350,246 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Check for the read permission and whether the external storage is mounted. If the storage
+     * can't be accessed, a message fragment is shown instead.
+     *
+     * @param anim either ANIM_LEVEL_UP, ANIM_LEVEL_DOWN or ANIM_NONE
+     * @return true if the storage can be read
+     */
+    private boolean checkStorageAccess(int anim) {
+        // check read permission
+        int permissionCheck = ContextCompat.checkSelfPermission(this,
+                Manifest.permission.READ_EXTERNAL_STORAGE);
+        if (permissionCheck != PackageManager.PERMISSION_GRANTED) {
+
+            if (!mPermissionsRequested.contains(PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE)) {
+                // request the permission
+                mPermissionsRequested.add(PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE);
+                ActivityCompat.requestPermissions(this,
+                        new String[]{Manifest.permission.READ_EXTERNAL_STORAGE},
+                        PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE);
+            } else {
+                // last permission request was unsuccessful
+                MessageFragment messageFragment = new MessageFragment();
+                messageFragment.setMessage(getString(R.string.missing_read_external_storage_permission));
+                replaceFragment(messageFragment, anim);
+            }
+            return false;
+        }
+
+        // check if the external storage is mounted
+        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            MessageFragment messageFragment = new MessageFragment();
+            messageFragment.setMessage(getString(R.string.external_storage_not_mounted));
+            replaceFragment(messageFragment, anim);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Show the storage usage report of the external storage. A cached report is shown right away,
+     * otherwise the storage is walked and the report is updated as the walk goes.
+     */
+    private void showStorageReport() {
+        if (!checkStorageAccess(ANIM_LEVEL_UP))
+            return;
+
+        File root = Environment.getExternalStorageDirectory();
+        getSupportActionBar().setSubtitle(getString(R.string.title_storage));
+        mCompareFragment = null;
+        mStorageFragment = new StorageFragment();
+        replaceFragment(mStorageFragment, ANIM_LEVEL_UP);
+
+        DiskUsageAnalyzer.Report cached = DiskUsageAnalyzer.getCachedReport(root);
+        if (cached != null) {
+            mStorageFragment.setReport(cached);
+        } else if (mDiskUsageAnalyzer == null) {
+            startStorageAnalysis();
+        }
+    }
+
+    /**
+     * Walk the external storage (cancelling the previous walk) and pass the partial and final
+     * reports to the storage fragment
+     */
+    private void startStorageAnalysis() {
+        if (mDiskUsageAnalyzer != null)
+            mDiskUsageAnalyzer.cancel();
+        if (mStorageFragment != null)
+            mStorageFragment.clearReport();
+
+        mDiskUsageAnalyzer = new DiskUsageAnalyzer(Environment.getExternalStorageDirectory(),
+                STORAGE_REPORT_TOP_N, new DiskUsageAnalyzer.Listener() {
+            @Override
+            public void onProgress(DiskUsageAnalyzer.Report report) {
+                postReport(this, report);
+            }
+
+            @Override
+            public void onFinished(DiskUsageAnalyzer.Report report) {
+                postReport(this, report);
+            }
+        });
+        mDiskUsageAnalyzer.start();
+    }
+
+    /**
+     * Show the report in the storage fragment (if it's still shown) on the UI thread. Reports of a
+     * walk that has since been replaced are dropped.
+     *
+     * @param listener the listener of the walk the report comes from
+     * @param report   the report to show
+     */
+    private void postReport(final DiskUsageAnalyzer.Listener listener,
+                            final DiskUsageAnalyzer.Report report) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mDiskUsageAnalyzer == null || mDiskUsageAnalyzer.getListener() != listener)
+                    return;
+                if (report.finished)
+                    mDiskUsageAnalyzer = null;
+                if (mStorageFragment != null)
+                    mStorageFragment.setReport(report);
+            }
+        });
+    }
+
+    /**
+     * Compare the two directories and show the differences. The comparison runs in the background,
+     * replacing any comparison still running.
+     *
+     * @param source the directory whose content is considered up to date
+     * @param target the directory to compare against the source
+     * @param anim   either ANIM_LEVEL_UP, ANIM_LEVEL_DOWN or ANIM_NONE
+     */
+    private void showComparison(File source, File target, int anim) {
+        if (!checkStorageAccess(anim))
+            return;
+
+        // mirroring a folder into its own subfolder (or the other way) would never end, compare
+        // canonical paths so that aliases like /sdcard and symbolic links are resolved
+        String sourcePath, targetPath;
+        try {
+            sourcePath = source.getCanonicalPath() + File.separator;
+            targetPath = target.getCanonicalPath() + File.separator;
+        } catch (IOException e) {
+            Toast.makeText(this, R.string.cant_read_dir, Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (sourcePath.startsWith(targetPath) || targetPath.startsWith(sourcePath)) {
+            Toast.makeText(this, R.string.compare_nested, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        if (mFolderComparator != null)
+            mFolderComparator.cancel();
+
+        getSupportActionBar().setSubtitle(getString(R.string.title_compare));
+        mStorageFragment = null;
+        mCompareFragment = new CompareFragment();
+        mCompareFragment.setFolders(source, target);
+        mCompareFragment.setMirroring(FolderComparator.isMirroring());
+        replaceFragment(mCompareFragment, anim);
+
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(this);
+        boolean verifyHashes = sharedPref.getBoolean(SettingsActivity.KEY_PREF_VERIFY_HASHES, false);
+        mFolderComparator = new FolderComparator(source, target, verifyHashes,
+                new FolderComparator.Listener() {
+                    @Override
+                    public void onFinished(final FolderComparator.Result result) {
+                        final FolderComparator.Listener listener = this;
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                // drop the result of a comparison that has since been replaced
+                                if (mFolderComparator == null
+                                        || mFolderComparator.getListener() != listener)
+                                    return;
+                                mFolderComparator = null;
+                                if (mCompareFragment != null)
+                                    mCompareFragment.setResult(result);
+                            }
+                        });
+                    }
+                });
+        mFolderComparator.start();
+    }
+
+    /**
+     * Check for write permissions and mirror the differences to the target.
+     *
+     * @param differences differences found by the comparison
+     */
+    public void tryToMirror(List<FolderComparator.Difference> differences) {
+        // check write permission
+        int permissionCheck = ContextCompat.checkSelfPermission(this,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE);
+        if (permissionCheck != PackageManager.PERMISSION_GRANTED) {
+
+            if (!mPermissionsRequested.contains(PERMISSIONS_REQUEST_WRITE_FOR_MIRROR)) {
+                // request the permission
+                mPermissionsRequested.add(PERMISSIONS_REQUEST_WRITE_FOR_MIRROR);
+                mDifferencesToMirror = differences;
+                ActivityCompat.requestPermissions(this,
+                        new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE},
+                        PERMISSIONS_REQUEST_WRITE_FOR_MIRROR);
+            } else {
+                // last permission request was unsuccessful
+                Toast.makeText(this, getString(R.string.missing_write_external_storage_permission),
+                        Toast.LENGTH_LONG).show();
+            }
+
+        } else {
+            mirror(differences);
+        }
+    }
+
+    /**
+     * Apply the differences in the background, unless a mirror is already running
+     *
+     * @param differences differences found by the comparison
+     */
+    private void mirror(List<FolderComparator.Difference> differences) {
+        if (!FolderComparator.startMirror(differences))
+            return;
+        if (mCompareFragment != null)
+            mCompareFragment.setMirroring(true);
+    }
+
+    /**
+     * Report the result of a mirror and compare the folders again. Called when the mirror finishes,
+     * or when the activity resumes after it finished in the background.
+     *
+     * @param result counts of the entries that couldn't be mirrored
+     */
+    private void onMirrorFinished(final FolderComparator.MirrorResult result) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // the activity may have been closed or recreated in the meantime
+                if (isFinishing() || mDestroyed)
+                    return;
+                if (result.failed > 0) {
+                    Toast.makeText(MainActivity.this, getResources().getQuantityString(
+                            R.plurals.mirror_failed, result.failed, result.failed),
+                            Toast.LENGTH_LONG).show();
+                } else if (result.timesNotKept > 0) {
+                    Toast.makeText(MainActivity.this, getResources().getQuantityString(
+                            R.plurals.mirror_times_not_kept, result.timesNotKept,
+                            result.timesNotKept), Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(MainActivity.this, R.string.mirror_done,
+                            Toast.LENGTH_SHORT).show();
+                }
+                if (mResumed && mCompareFragment != null)
+                    showComparison(mCompareFragment.mSource, mCompareFragment.mTarget, ANIM_NONE);
+            }
+        });
+    }
+
     /**
      * Check for write permissions and attempt to delete the files.
      *
@@ -288,25 +616,11 @@ public class MainActivity extends AppCompatActivity {
         } else {
             // delete the files
             for (File f : filesToDelete)
-                deleteRecursive(f);
+                FileUtils.deleteRecursive(f);
             refreshDir(ANIM_NONE);
         }
     }
 
-    /**
-     * If the path is a directory, it recursively deletes all files in it. Then it deletes the path
-     * itself.
-     *
-     * @param fileOrDirectory path to delete
-     */
-    public void deleteRecursive(File fileOrDirectory) {
-        if (fileOrDirectory.isDirectory())
-            for (File child : fileOrDirectory.listFiles())
-                deleteRecursive(child);
-
-        fileOrDirectory.delete();
-    }
-
     /**
      * Fragment to use for listing the files
      */
@@ -397,6 +711,211 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /**
+     * Fragment to use for showing the storage usage report
+     */
+    public static class StorageFragment extends Fragment {
+
+        List<StorageReportAdapter.Item> items = new ArrayList<>();
+        DiskUsageAnalyzer.Report mReport = null;
+        StorageReportAdapter mAdapter;
+        TextView mSummaryView;
+
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            View v = inflater.inflate(R.layout.storage_fragment, container, false);
+
+            // create and configure the list of report entries
+            mSummaryView = (TextView) v.findViewById(R.id.summary);
+            ListView listView = (ListView) v.findViewById(R.id.listview);
+            mAdapter = new StorageReportAdapter(
+                    getActivity(), R.layout.list_item, android.R.id.text1, items);
+            listView.setAdapter(mAdapter);
+            listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+                @Override
+                public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                    // navigate to the directory of the clicked entry
+                    File target = mAdapter.getItem(position).target;
+                    if (target != null)
+                        ((MainActivity) getActivity()).changeCurrentPath(target);
+                }
+            });
+
+            if (mReport != null)
+                setReport(mReport);
+            return v;
+        }
+
+        /**
+         * Forget the shown report, e.g. before the storage is walked again
+         */
+        public void clearReport() {
+            mReport = null;
+        }
+
+        /**
+         * Update the shown report. A partial report arriving after the final one is ignored.
+         *
+         * @param report new report to show
+         */
+        public void setReport(DiskUsageAnalyzer.Report report) {
+            if (mReport != null && mReport.finished && !report.finished)
+                return;
+            mReport = report;
+            if (mAdapter != null) {
+                String size = StorageReportAdapter.formatSize(getActivity(), report.totalBytes);
+                mSummaryView.setText(getString(report.finished ? R.string.storage_summary
+                        : R.string.storage_scanning, report.fileCount, size));
+                mAdapter.setReport(report);
+            }
+        }
+
+    }
+
+
+    /**
+     * Fragment to use for showing the differences between two folders
+     */
+    public static class CompareFragment extends Fragment {
+
+        File mSource;
+        File mTarget;
+        List<FolderComparator.Difference> differences = new ArrayList<>();
+        boolean mFinished = false;
+        boolean mSourceUnreadable = false;
+        int mSkippedDirectories = 0;
+        boolean mMirroring = false;
+        DifferenceAdapter mAdapter;
+        TextView mSummaryView;
+        Button mMirrorButton;
+
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            View v = inflater.inflate(R.layout.compare_fragment, container, false);
+
+            // create and configure the list of differences
+            mSummaryView = (TextView) v.findViewById(R.id.summary);
+            ListView listView = (ListView) v.findViewById(R.id.listview);
+            mAdapter = new DifferenceAdapter(
+                    getActivity(), R.layout.list_item, android.R.id.text1, differences);
+            listView.setAdapter(mAdapter);
+            listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+                @Override
+                public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                    // navigate to the directory containing the entry, on the side where it exists
+                    FolderComparator.Difference difference = mAdapter.getItem(position);
+                    File entry = difference.type == FolderComparator.ADDED
+                            ? difference.source : difference.target;
+                    ((MainActivity) getActivity()).changeCurrentPath(entry.getParentFile());
+                }
+            });
+
+            // ask user to confirm the mirroring
+            mMirrorButton = (Button) v.findViewById(R.id.mirror_button);
+            mMirrorButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    final List<FolderComparator.Difference> toMirror = new ArrayList<>(differences);
+                    new AlertDialog.Builder(getActivity())
+                            .setIcon(R.drawable.ic_warning)
+                            .setTitle(R.string.action_mirror)
+                            .setMessage(getString(R.string.mirror_confirm, mTarget.getAbsolutePath()))
+                            .setPositiveButton(R.string.yes, new DialogInterface.OnClickListener() {
+                                @Override
+                                public void onClick(DialogInterface dialog, int which) {
+                                    ((MainActivity) getActivity()).tryToMirror(toMirror);
+                                }
+                            })
+                            .setNegativeButton(R.string.no, null)
+                            .show();
+                }
+            });
+
+            updateViews();
+            return v;
+        }
+
+        /**
+         * Set the compared folders
+         *
+         * @param source the directory whose content is considered up to date
+         * @param target the directory compared against the source
+         */
+        public void setFolders(File source, File target) {
+            mSource = source;
+            mTarget = target;
+        }
+
+        /**
+         * Disable mirroring while a mirror is being applied
+         *
+         * @param mirroring whether a mirror is being applied
+         */
+        public void setMirroring(boolean mirroring) {
+            mMirroring = mirroring;
+            if (mMirrorButton != null)
+                updateViews();
+        }
+
+        /**
+         * Show the result of the comparison
+         *
+         * @param result result of the comparison
+         */
+        public void setResult(FolderComparator.Result result) {
+            differences.clear();
+            differences.addAll(result.differences);
+            mSourceUnreadable = result.sourceUnreadable;
+            mSkippedDirectories = result.skippedDirectories;
+            mFinished = true;
+            if (mAdapter != null) {
+                mAdapter.notifyDataSetChanged();
+                updateViews();
+            }
+        }
+
+        private void updateViews() {
+            if (mSource == null) {
+                // restored by the system after recreation, the activity replaces it right away
+                mSummaryView.setText("");
+                mMirrorButton.setEnabled(false);
+                return;
+            }
+            if (!mFinished) {
+                mSummaryView.setText(getString(R.string.comparing,
+                        mSource.getAbsolutePath(), mTarget.getAbsolutePath()));
+            } else if (mSourceUnreadable) {
+                mSummaryView.setText(getString(R.string.compare_source_unreadable,
+                        mSource.getAbsolutePath()));
+            } else if (differences.isEmpty() && mSkippedDirectories == 0) {
+                mSummaryView.setText(R.string.compare_identical);
+            } else {
+                int added = 0, removed = 0, changed = 0;
+                for (FolderComparator.Difference difference : differences) {
+                    if (difference.type == FolderComparator.ADDED)
+                        added++;
+                    else if (difference.type == FolderComparator.REMOVED)
+                        removed++;
+                    else
+                        changed++;
+                }
+                String summary = getString(R.string.compare_summary, added, removed, changed);
+                if (mSkippedDirectories > 0) {
+                    // the folders can't be called identical if a part of the source wasn't read
+                    summary = getResources().getQuantityString(R.plurals.compare_skipped,
+                            mSkippedDirectories, mSkippedDirectories) + "\n" + summary;
+                }
+                mSummaryView.setText(summary);
+            }
+            mMirrorButton.setEnabled(mFinished && !mMirroring && !mSourceUnreadable
+                    && !differences.isEmpty());
+        }
+
+    }
+
+
     /**
      * Fragment to use when displaying an information about the current directory.
      */
@@ -11,6 +11,7 @@ import android.support.v7.app.AppCompatActivity;
 public class SettingsActivity extends AppCompatActivity {
 
     public static final String KEY_PREF_DEFAULT_DIRECTORY = "pref_defaultDir";
+    public static final String KEY_PREF_VERIFY_HASHES = "pref_verifyHashes";
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -0,0 +1,175 @@
+package com.jjurm.android.filebrowser;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+import android.text.format.Formatter;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A subclass of ArrayAdapter showing a DiskUsageAnalyzer.Report as a list of sections (largest
+ * files, largest folders, usage by top-level folder and by extension)
+ */
+public class StorageReportAdapter extends ArrayAdapter<StorageReportAdapter.Item> {
+
+    // types of rows
+    public static final int TYPE_HEADER = 0;
+    public static final int TYPE_FILE = 1;
+    public static final int TYPE_FOLDER = 2;
+    public static final int TYPE_EXTENSION = 3;
+    public static final int TYPE_ROOT_FILES = 4;
+
+    private Context mContext;
+    private List<Item> mObjects;
+
+    public StorageReportAdapter(Context context, int resource, int textViewResourceId,
+                                List<Item> objects) {
+        super(context, resource, textViewResourceId, objects);
+        mContext = context;
+        mObjects = objects;
+    }
+
+    /**
+     * Replace the shown items with the content of the report
+     *
+     * @param report the report to show
+     */
+    public void setReport(DiskUsageAnalyzer.Report report) {
+        mObjects.clear();
+        mObjects.addAll(buildItems(mContext, report));
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Flatten the report into a list of rows
+     */
+    static List<Item> buildItems(Context context, DiskUsageAnalyzer.Report report) {
+        List<Item> items = new ArrayList<>();
+        String rootPath = report.root.getAbsolutePath();
+
+        items.add(new Item(TYPE_HEADER, context.getString(R.string.largest_files), null));
+        for (DiskUsageAnalyzer.Entry entry : report.largestFiles) {
+            items.add(new Item(TYPE_FILE, context.getString(R.string.name_and_size,
+                    relativePath(rootPath, entry.file), formatSize(context, entry.size)),
+                    entry.file.getParentFile()));
+        }
+
+        items.add(new Item(TYPE_HEADER, context.getString(R.string.largest_folders), null));
+        for (DiskUsageAnalyzer.Entry entry : report.largestFolders) {
+            items.add(new Item(TYPE_FOLDER, context.getString(R.string.name_and_size,
+                    relativePath(rootPath, entry.file) + "/", formatSize(context, entry.size)),
+                    entry.file));
+        }
+
+        items.add(new Item(TYPE_HEADER, context.getString(R.string.usage_by_folder), null));
+        for (Map.Entry<String, Long> entry : report.bytesByTopLevelFolder) {
+            String size = formatSize(context, entry.getValue());
+            if (entry.getKey().equals(DiskUsageAnalyzer.ROOT_FILES)) {
+                items.add(new Item(TYPE_ROOT_FILES, context.getString(R.string.name_and_size,
+                        context.getString(R.string.files_in_root), size), report.root));
+            } else {
+                items.add(new Item(TYPE_FOLDER, context.getString(R.string.name_and_size,
+                        entry.getKey() + "/", size), new File(report.root, entry.getKey())));
+            }
+        }
+
+        items.add(new Item(TYPE_HEADER, context.getString(R.string.usage_by_extension), null));
+        for (Map.Entry<String, Long> entry : report.bytesByExtension) {
+            String name = entry.getKey().equals(DiskUsageAnalyzer.NO_EXTENSION)
+                    ? context.getString(R.string.no_extension) : "." + entry.getKey();
+            items.add(new Item(TYPE_EXTENSION, context.getString(R.string.name_and_size, name,
+                    formatSize(context, entry.getValue())), null));
+        }
+
+        return items;
+    }
+
+    private static String relativePath(String rootPath, File file) {
+        String path = file.getAbsolutePath();
+        if (path.startsWith(rootPath + File.separator))
+            return path.substring(rootPath.length() + 1);
+        return path;
+    }
+
+    static String formatSize(Context context, long bytes) {
+        return Formatter.formatShortFileSize(context, bytes);
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return mObjects.get(position).target != null;
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+        View v = super.getView(position, convertView, parent);
+        Item item = mObjects.get(position);
+
+        // choose the icon according to the type of the row
+        ImageView imageView = (ImageView) v.findViewById(R.id.imageView);
+        switch (item.type) {
+            case TYPE_FILE:
+                imageView.setVisibility(View.VISIBLE);
+                imageView.setImageResource(R.drawable.ic_file);
+                break;
+            case TYPE_FOLDER:
+            case TYPE_ROOT_FILES:
+                imageView.setVisibility(View.VISIBLE);
+                imageView.setImageResource(R.drawable.ic_folder);
+                break;
+            default:
+                imageView.setVisibility(View.INVISIBLE);
+        }
+
+        // highlight section headers
+        if (item.type == TYPE_HEADER) {
+            v.setBackgroundColor(ContextCompat.getColor(mContext, R.color.colorPrimaryLight));
+        } else {
+            v.setBackgroundColor(ContextCompat.getColor(mContext, android.R.color.white));
+        }
+
+        return v;
+    }
+
+    /**
+     * A single row of the report
+     */
+    static class Item {
+
+        final int type;
+        final String label;
+
+        /**
+         * the directory to navigate to when the row is clicked, or null if the row is not clickable
+         */
+        final File target;
+
+        Item(int type, String label, File target) {
+            this.type = type;
+            this.label = label;
+            this.target = target;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return label;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.jjurm.android.filebrowser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for DiskUsageAnalyzer, walking a known tree in a temporary folder.
+ */
+public class DiskUsageAnalyzerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("root");
+        write(new File(root, "r.txt"), 7);
+        write(new File(root, "a/x.jpg"), 5000);
+        write(new File(root, "a/y.TXT"), 300);
+        write(new File(root, "a/b/z.jpg"), 2000);
+        write(new File(root, "c/w"), 100);
+        write(new File(root, "c/d/v.txt"), 50);
+    }
+
+    @Test
+    public void totalsAndFolderSizes() throws Exception {
+        DiskUsageAnalyzer.Report report = analyze(10);
+
+        assertTrue(report.finished);
+        assertEquals(7457, report.totalBytes);
+        assertEquals(6, report.fileCount);
+
+        Map<String, Long> folders = new HashMap<>();
+        for (DiskUsageAnalyzer.Entry entry : report.largestFolders)
+            folders.put(relative(entry.file), entry.size);
+        assertEquals(4, folders.size());
+        assertEquals(Long.valueOf(7300), folders.get("a"));
+        assertEquals(Long.valueOf(2000), folders.get("a/b"));
+        assertEquals(Long.valueOf(150), folders.get("c"));
+        assertEquals(Long.valueOf(50), folders.get("c/d"));
+    }
+
+    @Test
+    public void largestListsAreBoundedAndOrdered() throws Exception {
+        DiskUsageAnalyzer.Report report = analyze(2);
+
+        assertEquals(2, report.largestFiles.size());
+        assertEquals("a/x.jpg", relative(report.largestFiles.get(0).file));
+        assertEquals(5000, report.largestFiles.get(0).size);
+        assertEquals("a/b/z.jpg", relative(report.largestFiles.get(1).file));
+        assertEquals(2000, report.largestFiles.get(1).size);
+
+        assertEquals(2, report.largestFolders.size());
+        assertEquals("a", relative(report.largestFolders.get(0).file));
+        assertEquals("a/b", relative(report.largestFolders.get(1).file));
+    }
+
+    @Test
+    public void largestFilesSortedLargestFirst() throws Exception {
+        DiskUsageAnalyzer.Report report = analyze(10);
+
+        assertEquals(6, report.largestFiles.size());
+        for (int i = 1; i < report.largestFiles.size(); i++)
+            assertTrue(report.largestFiles.get(i - 1).size >= report.largestFiles.get(i).size);
+    }
+
+    @Test
+    public void totalsByExtensionAndTopLevelFolder() throws Exception {
+        DiskUsageAnalyzer.Report report = analyze(10);
+
+        Map<String, Long> byExtension = toMap(report.bytesByExtension);
+        assertEquals(3, byExtension.size());
+        assertEquals(Long.valueOf(7000), byExtension.get("jpg"));
+        assertEquals(Long.valueOf(357), byExtension.get("txt"));
+        assertEquals(Long.valueOf(100), byExtension.get(DiskUsageAnalyzer.NO_EXTENSION));
+        assertEquals("jpg", report.bytesByExtension.get(0).getKey());
+
+        Map<String, Long> byFolder = toMap(report.bytesByTopLevelFolder);
+        assertEquals(3, byFolder.size());
+        assertEquals(Long.valueOf(7300), byFolder.get("a"));
+        assertEquals(Long.valueOf(150), byFolder.get("c"));
+        assertEquals(Long.valueOf(7), byFolder.get(DiskUsageAnalyzer.ROOT_FILES));
+    }
+
+    @Test
+    public void symlinksAreSkipped() throws Exception {
+        Files.createSymbolicLink(new File(root, "dirlink").toPath(), new File(root, "a").toPath());
+        Files.createSymbolicLink(new File(root, "c/filelink.jpg").toPath(),
+                new File(root, "a/x.jpg").toPath());
+        Files.createSymbolicLink(new File(root, "c/d/loop").toPath(), root.toPath());
+
+        DiskUsageAnalyzer.Report report = analyze(10);
+
+        assertEquals(7457, report.totalBytes);
+        assertEquals(6, report.fileCount);
+        assertEquals(4, report.largestFolders.size());
+        assertEquals("a/x.jpg", relative(report.largestFiles.get(0).file));
+        assertEquals(2000, report.largestFiles.get(1).size);
+    }
+
+    private DiskUsageAnalyzer.Report analyze(int topN) throws InterruptedException {
+        final List<DiskUsageAnalyzer.Report> result = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        new DiskUsageAnalyzer(root, topN, new DiskUsageAnalyzer.Listener() {
+            @Override
+            public void onProgress(DiskUsageAnalyzer.Report report) {
+            }
+
+            @Override
+            public void onFinished(DiskUsageAnalyzer.Report report) {
+                result.add(report);
+                latch.countDown();
+            }
+        }).start();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return result.get(0);
+    }
+
+    private String relative(File file) {
+        return file.getAbsolutePath().substring(root.getAbsolutePath().length() + 1)
+                .replace(File.separatorChar, '/');
+    }
+
+    private static Map<String, Long> toMap(List<Map.Entry<String, Long>> entries) {
+        Map<String, Long> map = new HashMap<>();
+        for (Map.Entry<String, Long> entry : entries)
+            map.put(entry.getKey(), entry.getValue());
+        return map;
+    }
+
+    private static void write(File file, int size) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.jjurm.android.filebrowser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for FolderComparator, comparing and mirroring trees in a temporary folder.
+ */
+public class FolderComparatorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        source = tmp.newFolder("source");
+        target = tmp.newFolder("target");
+    }
+
+    @Test
+    public void identicalTrees_noDifferences() throws Exception {
+        write(new File(source, "a/b.txt"), "same");
+        write(new File(target, "a/b.txt"), "same");
+        new File(target, "a/b.txt").setLastModified(new File(source, "a/b.txt").lastModified());
+
+        assertEquals("[]", compare(false).toString());
+    }
+
+    @Test
+    public void addedRemovedAndChangedEntries() throws Exception {
+        write(new File(source, "new/file.txt"), "added");
+        write(new File(target, "old.txt"), "removed");
+        write(new File(source, "changed.txt"), "longer content");
+        write(new File(target, "changed.txt"), "short");
+
+        assertEquals("[* changed.txt, + new/, - old.txt]", compare(false).toString());
+    }
+
+    @Test
+    public void missingSource_reportedAsUnreadable() throws Exception {
+        write(new File(target, "file.txt"), "would be removed");
+        source = new File(source, "missing");
+
+        FolderComparator.Result result = compareResult(false);
+        assertTrue(result.sourceUnreadable);
+        assertEquals("[]", result.differences.toString());
+    }
+
+    @Test
+    public void sameSizeDifferentContent_detectedOnlyByHash() throws Exception {
+        File s = write(new File(source, "f.txt"), "aaaa");
+        File t = write(new File(target, "f.txt"), "bbbb");
+        t.setLastModified(s.lastModified());
+
+        assertEquals("[]", compare(false).toString());
+        assertEquals("[* f.txt]", compare(true).toString());
+    }
+
+    @Test
+    public void mirror_secondCompareIsEmpty() throws Exception {
+        write(new File(source, "new/deep/file.txt"), "added");
+        write(new File(source, "changed.txt"), "new content");
+        write(new File(target, "changed.txt"), "old");
+        write(new File(target, "gone/file.txt"), "removed");
+
+        FolderComparator.MirrorResult result = FolderComparator.mirror(compare(false));
+        assertEquals(0, result.failed);
+
+        assertEquals("[]", compare(false).toString());
+        assertEquals("[]", compare(true).toString());
+        assertFalse(new File(target, "gone").exists());
+    }
+
+    @Test
+    public void mirror_failedCopyKeepsOldTarget() throws Exception {
+        write(new File(source, "f.txt"), "new content");
+        File old = write(new File(target, "f.txt"), "old");
+        List<FolderComparator.Difference> differences = compare(false);
+        assertEquals("[* f.txt]", differences.toString());
+
+        // the source disappears before the mirror, so the copy fails
+        assertTrue(new File(source, "f.txt").delete());
+        assertEquals(1, FolderComparator.mirror(differences).failed);
+        assertEquals(3, old.length());
+        assertEquals(1, FileUtils.listFiles(target).length);
+    }
+
+    @Test
+    public void mirror_directoryReplacesFile() throws Exception {
+        write(new File(source, "x/inner.txt"), "in directory");
+        write(new File(target, "x"), "plain file");
+        assertEquals("[* x/]", compare(false).toString());
+
+        assertEquals(0, FolderComparator.mirror(compare(false)).failed);
+        assertTrue(new File(target, "x/inner.txt").isFile());
+        assertEquals("[]", compare(false).toString());
+    }
+
+    @Test
+    public void mirror_fileReplacesDirectory() throws Exception {
+        write(new File(source, "x"), "plain file");
+        write(new File(target, "x/inner.txt"), "in directory");
+        assertEquals("[* x]", compare(false).toString());
+
+        assertEquals(0, FolderComparator.mirror(compare(false)).failed);
+        assertTrue(new File(target, "x").isFile());
+        assertEquals("[]", compare(false).toString());
+    }
+
+    @Test
+    public void mirror_removedSymlinkDoesNotDeleteLinkedFiles() throws Exception {
+        File outside = tmp.newFolder("outside");
+        File precious = write(new File(outside, "precious.txt"), "keep me");
+        Files.createSymbolicLink(new File(target, "link").toPath(), outside.toPath());
+        assertEquals("[- link/]", compare(false).toString());
+
+        assertEquals(0, FolderComparator.mirror(compare(false)).failed);
+        assertFalse(new File(target, "link").exists());
+        assertTrue(precious.isFile());
+    }
+
+    @Test
+    public void mirror_symlinkedTargetDirectoryIsReplacedNotFollowed() throws Exception {
+        write(new File(source, "x/file.txt"), "content");
+        File outside = tmp.newFolder("outside");
+        File precious = write(new File(outside, "precious.txt"), "keep me");
+        Files.createSymbolicLink(new File(target, "x").toPath(), outside.toPath());
+        assertEquals("[* x/]", compare(false).toString());
+
+        assertEquals(0, FolderComparator.mirror(compare(false)).failed);
+        assertTrue(precious.isFile());
+        assertFalse(new File(outside, "file.txt").exists());
+        assertTrue(new File(target, "x/file.txt").isFile());
+        assertEquals("[]", compare(false).toString());
+    }
+
+    @Test
+    public void mirror_symlinkedTargetFileIsReplacedNotWrittenThrough() throws Exception {
+        write(new File(source, "f.txt"), "new content");
+        File outside = tmp.newFolder("outside");
+        File precious = write(new File(outside, "precious.txt"), "keep me");
+        Files.createSymbolicLink(new File(target, "f.txt").toPath(), precious.toPath());
+        assertEquals("[* f.txt]", compare(false).toString());
+
+        assertEquals(0, FolderComparator.mirror(compare(false)).failed);
+        assertEquals(7, precious.length());
+        assertEquals(11, new File(target, "f.txt").length());
+        assertEquals("[]", compare(false).toString());
+    }
+
+    @Test
+    public void mirror_addedSymlinkCycleIsNotFollowed() throws Exception {
+        write(new File(source, "dir/file.txt"), "content");
+        Files.createSymbolicLink(new File(source, "dir/loop").toPath(), source.toPath());
+
+        FolderComparator.MirrorResult result = FolderComparator.mirror(compare(false));
+        assertEquals(1, result.failed);
+        assertTrue(new File(target, "dir/file.txt").isFile());
+        assertFalse(new File(target, "dir/loop").exists());
+    }
+
+    private List<FolderComparator.Difference> compare(boolean verifyHashes)
+            throws InterruptedException {
+        FolderComparator.Result result = compareResult(verifyHashes);
+        assertFalse(result.sourceUnreadable);
+        assertEquals(0, result.skippedDirectories);
+        return result.differences;
+    }
+
+    private FolderComparator.Result compareResult(boolean verifyHashes)
+            throws InterruptedException {
+        final List<FolderComparator.Result> result = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        new FolderComparator(source, target, verifyHashes, new FolderComparator.Listener() {
+            @Override
+            public void onFinished(FolderComparator.Result r) {
+                result.add(r);
+                latch.countDown();
+            }
+        }).start();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return result.get(0);
+    }
+
+    private static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+}